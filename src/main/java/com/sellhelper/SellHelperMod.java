@@ -22,11 +22,12 @@ public class SellHelperMod implements ClientModInitializer {
         SellHelperCommand.register();
         SellHelperHud.register(logic);
 
-        // Check keybind every tick (main thread)
+        // Check keybind and advance GUI flows every tick (main thread)
         ClientTickEvents.END_CLIENT_TICK.register(client -> {
             while (SellHelperKeybind.TOGGLE.wasPressed()) {
                 logic.toggle();
             }
+            logic.tick(client);
         });
 
         // Purchase detection via chat
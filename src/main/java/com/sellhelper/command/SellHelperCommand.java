@@ -2,6 +2,7 @@ package com.sellhelper.command;
 
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.LongArgumentType;
+import com.sellhelper.SellHelperMod;
 import com.sellhelper.config.SellHelperConfig;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
@@ -41,6 +42,17 @@ public class SellHelperCommand {
                                                 ))
                                         )
                                 )
+                                .then(ClientCommandManager.literal("collect")
+                                        .executes(ctx -> collect(ctx.getSource()))
+                                )
+                                .then(ClientCommandManager.literal("coordination")
+                                        .then(ClientCommandManager.argument("mode", IntegerArgumentType.integer(0, 1))
+                                                .executes(ctx -> setCoordination(
+                                                        ctx.getSource(),
+                                                        IntegerArgumentType.getInteger(ctx, "mode")
+                                                ))
+                                        )
+                                )
                 )
         );
     }
@@ -77,8 +89,27 @@ public class SellHelperCommand {
         config.ahResell = mode;
         config.save();
 
-        String desc = (mode == 1) ? "команда /ah resell" : "GUI (слот 47 → слот 53)";
+        String desc = (mode == 1) ? "команда /ah resell" : "GUI-сценарий guiFlows.resell";
         source.sendFeedback(Text.literal("[SellHelper] ah_resell: " + mode + " (" + desc + ")"));
         return 1;
     }
+
+    private static int collect(FabricClientCommandSource source) {
+        if (!SellHelperMod.getLogic().collectStorage()) {
+            source.sendError(Text.literal("[SellHelper] Сейчас идёт продажа или сбор — попробуйте позже"));
+            return 0;
+        }
+        source.sendFeedback(Text.literal("[SellHelper] Забираю лоты из хранилища /ah"));
+        return 1;
+    }
+
+    private static int setCoordination(FabricClientCommandSource source, int mode) {
+        SellHelperConfig config = SellHelperConfig.get();
+        config.coordination = mode;
+        config.save();
+
+        String desc = (mode == 1) ? "общая цена и расписание ресейла с другими клиентами" : "выключена";
+        source.sendFeedback(Text.literal("[SellHelper] coordination: " + mode + " (" + desc + ")"));
+        return 1;
+    }
 }
@@ -6,6 +6,9 @@ import net.fabricmc.loader.api.FabricLoader;
 
 import java.io.*;
 import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class SellHelperConfig {
 
@@ -16,8 +19,89 @@ public class SellHelperConfig {
     public String itemId = "minecraft:air";
     public int amount = 1;
     public long price = 0;
-    /** 1 = send /ah resell command directly; 0 = open /ah GUI → click slot 47 → click slot 53 */
+    /** 1 = send /ah resell command directly; 0 = run the "resell" GUI flow (see guiFlows) */
     public int ahResell = 1;
+    /** 1 = share item/price/resell schedule with other SellHelper clients on this machine; 0 = run alone */
+    public int coordination = 0;
+    /** Max /ah sell commands awaiting the server's answer at once (1 = wait for each) */
+    public int sellWindow = 1;
+    /** ms to wait for a listing answer before assuming the sell went through */
+    public int sellAckTimeoutMs = 1500;
+    /** Chat fragments confirming that a listing was accepted */
+    public List<String> sellAcceptedMessages = List.of("выставлен на продажу", "Вы выставили");
+    /** Chat fragments rejecting a listing (AH-full is handled separately) */
+    public List<String> sellRejectedMessages = List.of("Возьмите предмет в руку", "нельзя продать");
+    /** 1 = on "освободите хранилище" pull our expired listings out of AH storage and sell them again */
+    public int collectStorage = 1;
+    /**
+     * GUI interactions as data, by flow name ("resell", "collect").  Compiled
+     * into screen matchers once at startup; a flow that fails to compile falls
+     * back to its default below.
+     */
+    public Map<String, List<GuiStep>> guiFlows = defaultGuiFlows();
+
+    /** One step of a GUI flow: wait for a matching screen, then act on it. */
+    public static class GuiStep {
+        /** Chat command (without "/") sent when the step starts, optional */
+        public String command;
+        /** Substring the screen title must contain, optional */
+        public String title;
+        /** Slot that must hold an item before the step acts, -1 = none */
+        public int waitSlot = -1;
+        /** Item id required in waitSlot, optional */
+        public String waitItem;
+        /** Wait for a screen other than the one the previous click was made on */
+        public boolean newScreen = true;
+        /** "click" | "shift_click" | "collect" | "close" */
+        public String action = "click";
+        /** Slot to click ("click", "shift_click") */
+        public int slot = -1;
+        /** "collect": item to take back, empty = the item being sold */
+        public String item;
+        /** "collect": listing slots per page (0 … pageSize-1) */
+        public int pageSize = 45;
+        /** "collect": next-page button, -1 = no paging */
+        public int nextPage = -1;
+        /** Give up if no matching screen shows up within this many ms */
+        public int timeoutMs = 3000;
+
+        public static GuiStep click(String command, int slot) {
+            GuiStep s = new GuiStep();
+            s.command  = command;
+            s.waitSlot = slot;
+            s.slot     = slot;
+            return s;
+        }
+
+        public static GuiStep collect(int pageSize, int nextPage) {
+            GuiStep s = new GuiStep();
+            s.action   = "collect";
+            s.pageSize = pageSize;
+            s.nextPage = nextPage;
+            return s;
+        }
+
+        public static GuiStep close() {
+            GuiStep s = new GuiStep();
+            s.action    = "close";
+            s.newScreen = false;
+            return s;
+        }
+    }
+
+    /** Layout of the FunTime /ah GUI: slot 46 opens storage, 52 relists everything, 53 pages. */
+    public static Map<String, List<GuiStep>> defaultGuiFlows() {
+        Map<String, List<GuiStep>> flows = new LinkedHashMap<>();
+        flows.put("resell", List.of(
+                GuiStep.click("ah", 46),
+                GuiStep.click(null, 52),
+                GuiStep.close()));
+        flows.put("collect", List.of(
+                GuiStep.click("ah", 46),
+                GuiStep.collect(45, 53),
+                GuiStep.close()));
+        return flows;
+    }
 
     private static SellHelperConfig instance;
 
@@ -0,0 +1,274 @@
+package com.sellhelper.coord;
+
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shared coordination table for several SellHelper clients running on one machine.
+ *
+ * The table lives in a small memory-mapped file in the Fabric config dir
+ * ({@code sellhelper-coord.bin}).  Every running instance claims one fixed-size
+ * slot with a CAS on the slot's owner word and then periodically publishes its
+ * item, price, listing count and next resell deadline there.  No locks are
+ * taken across processes:
+ *
+ *   - a slot is claimed with compareAndSet(owner, 0 | stale, token)
+ *   - only the owner ever writes the slot body, guarded by a per-slot
+ *     sequence counter (odd while a write is in progress, seqlock style)
+ *   - readers retry while the sequence is odd or changed under them
+ *   - slots whose heartbeat is older than {@link #STALE_MS} count as free,
+ *     so a crashed client never blocks the table
+ *
+ * Slot layout (little endian, {@value #SLOT_SIZE} bytes, 8-byte aligned):
+ *   0   long  owner token (0 = free)
+ *   8   long  sequence
+ *   16  long  heartbeat (epoch ms)
+ *   24  long  price
+ *   32  long  next resell deadline (epoch ms, 0 = none)
+ *   40  int   listing count
+ *   44  int   item id length
+ *   48  ...   item id bytes (UTF-8, up to {@value #ITEM_BYTES})
+ */
+public class SellHelperCoordinator {
+
+    private static final Path FILE_PATH =
+            FabricLoader.getInstance().getConfigDir().resolve("sellhelper-coord.bin");
+
+    private static final int MAGIC       = 0x53484331; // "SHC1"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE   = 128;
+    private static final int SLOTS       = 16;
+    private static final int ITEM_BYTES  = SLOT_SIZE - 48;
+    private static final int FILE_SIZE   = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static final int OFF_OWNER     = 0;
+    private static final int OFF_SEQ       = 8;
+    private static final int OFF_HEARTBEAT = 16;
+    private static final int OFF_PRICE     = 24;
+    private static final int OFF_RESELL    = 32;
+    private static final int OFF_LISTINGS  = 40;
+    private static final int OFF_ITEM_LEN  = 44;
+    private static final int OFF_ITEM      = 48;
+
+    /** A slot whose heartbeat is older than this is considered abandoned. */
+    public static final long STALE_MS = 15_000;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** Snapshot of another instance's published state. */
+    public record Peer(String itemId, long price, int listings, long nextResellAt) {}
+
+    private final long token;
+    private MappedByteBuffer buffer;
+    private int slot = -1;
+
+    public SellHelperCoordinator() {
+        long t;
+        do {
+            t = ThreadLocalRandom.current().nextLong();
+        } while (t == 0);
+        token = t;
+    }
+
+    // ----------------------------------------------------------- lifecycle
+
+    /**
+     * Maps the shared file and claims a free slot.
+     * Returns false if the file can't be mapped or every slot is taken,
+     * in which case the instance simply runs uncoordinated.
+     */
+    public synchronized boolean join() {
+        if (slot >= 0) return true;
+        if (buffer == null && !map()) return false;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SLOTS; i++) {
+            int base  = slotBase(i);
+            long owner = (long) LONGS.getVolatile(buffer, base + OFF_OWNER);
+            boolean free = owner == 0
+                    || now - (long) LONGS.getVolatile(buffer, base + OFF_HEARTBEAT) > STALE_MS;
+            if (free && LONGS.compareAndSet(buffer, base + OFF_OWNER, owner, token)) {
+                slot = i;
+                // A previous owner may have died mid-write and left the sequence odd
+                long seq = (long) LONGS.getVolatile(buffer, base + OFF_SEQ);
+                if ((seq & 1) != 0) LONGS.setVolatile(buffer, base + OFF_SEQ, seq + 1);
+                LONGS.setVolatile(buffer, base + OFF_HEARTBEAT, now);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Releases our slot so that peers stop taking us into account. */
+    public synchronized void leave() {
+        if (slot < 0) return;
+        LONGS.compareAndSet(buffer, slotBase(slot) + OFF_OWNER, token, 0L);
+        slot = -1;
+    }
+
+    public synchronized boolean isJoined() {
+        return slot >= 0;
+    }
+
+    // ------------------------------------------------------------- publish
+
+    /** Publishes our current state and refreshes the heartbeat. */
+    public synchronized void publish(String itemId, long price, int listings, long nextResellAt) {
+        if (slot < 0) return;
+        int base = slotBase(slot);
+        if ((long) LONGS.getVolatile(buffer, base + OFF_OWNER) != token) {
+            // A peer reclaimed our slot after we stalled — rejoin elsewhere
+            slot = -1;
+            if (!join()) return;
+            base = slotBase(slot);
+        }
+
+        byte[] item = itemId.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(item.length, ITEM_BYTES);
+
+        // Force parity so a sequence left odd by a dead writer can't invert the protocol
+        long odd = (long) LONGS.getVolatile(buffer, base + OFF_SEQ) | 1;
+        LONGS.setVolatile(buffer, base + OFF_SEQ, odd);
+        // Keep the body stores below from becoming visible before the odd sequence
+        VarHandle.releaseFence();
+        buffer.putLong(base + OFF_PRICE, price);
+        buffer.putLong(base + OFF_RESELL, nextResellAt);
+        buffer.putInt(base + OFF_LISTINGS, listings);
+        buffer.putInt(base + OFF_ITEM_LEN, len);
+        buffer.put(base + OFF_ITEM, item, 0, len);
+        LONGS.setVolatile(buffer, base + OFF_HEARTBEAT, System.currentTimeMillis());
+        LONGS.setVolatile(buffer, base + OFF_SEQ, odd + 1);
+    }
+
+    // ---------------------------------------------------------------- read
+
+    /** Returns every live instance except ourselves, ordered by slot. */
+    public synchronized List<Peer> peers() {
+        List<Peer> out = new ArrayList<>();
+        if (slot < 0) return out;
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SLOTS; i++) {
+            if (i == slot) continue;
+            Peer p = readSlot(i, now);
+            if (p != null) out.add(p);
+        }
+        return out;
+    }
+
+    /** Live peers that are selling the same item as us. */
+    public List<Peer> peersFor(String itemId) {
+        List<Peer> out = new ArrayList<>();
+        for (Peer p : peers()) {
+            if (p.itemId().equals(itemId)) out.add(p);
+        }
+        return out;
+    }
+
+    /**
+     * Agreed floor for an item: the highest price any instance selling it
+     * has published.  Listing at or above it means no instance undercuts another.
+     */
+    public long floorPrice(String itemId, long ownPrice) {
+        long floor = ownPrice;
+        for (Peer p : peersFor(itemId)) {
+            floor = Math.max(floor, p.price());
+        }
+        return floor;
+    }
+
+    /**
+     * Picks when our first resell should fire so that it doesn't coincide
+     * with a peer's.  Resells of all live instances are spread evenly over
+     * {@code periodMs}; the returned value is a delay from now in ms.
+     */
+    public long staggeredResellDelay(long periodMs) {
+        List<Peer> peers = peers();
+        if (peers.isEmpty()) return 0;
+
+        long now = System.currentTimeMillis();
+        long gap = periodMs / (peers.size() + 1);
+        long candidate = now;
+        // Each pass pushes the candidate past one conflicting deadline, so
+        // peers.size() + 1 passes are always enough to settle.
+        for (int pass = 0; pass <= peers.size(); pass++) {
+            boolean moved = false;
+            for (Peer p : peers) {
+                long deadline = p.nextResellAt();
+                if (deadline <= 0) continue;
+                // Fold peer deadlines into the window starting at now
+                long d = deadline < now ? deadline + ((now - deadline) / periodMs + 1) * periodMs : deadline;
+                if (Math.abs(d - candidate) < gap) {
+                    candidate = d + gap;
+                    moved = true;
+                }
+            }
+            if (!moved) break;
+        }
+        return Math.min(candidate - now, periodMs);
+    }
+
+    // ------------------------------------------------------------ internals
+
+    private boolean map() {
+        try {
+            Files.createDirectories(FILE_PATH.getParent());
+            try (FileChannel ch = FileChannel.open(FILE_PATH,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = ch.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            // A fresh (zero-filled) file is already a valid empty table; the magic
+            // just lets us detect a foreign or outdated layout and wipe it.
+            if (buffer.getInt(0) != MAGIC) {
+                for (int i = 0; i < FILE_SIZE; i++) buffer.put(i, (byte) 0);
+                buffer.putInt(0, MAGIC);
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            buffer = null;
+            return false;
+        }
+    }
+
+    private Peer readSlot(int i, long now) {
+        int base = slotBase(i);
+        for (int attempt = 0; attempt < 8; attempt++) {
+            long seq = (long) LONGS.getVolatile(buffer, base + OFF_SEQ);
+            if ((seq & 1) != 0) { Thread.onSpinWait(); continue; }
+
+            long owner     = (long) LONGS.getVolatile(buffer, base + OFF_OWNER);
+            long heartbeat = (long) LONGS.getVolatile(buffer, base + OFF_HEARTBEAT);
+            if (owner == 0 || now - heartbeat > STALE_MS) return null;
+
+            long price    = buffer.getLong(base + OFF_PRICE);
+            long resellAt = buffer.getLong(base + OFF_RESELL);
+            int listings  = buffer.getInt(base + OFF_LISTINGS);
+            int len       = Math.max(0, Math.min(buffer.getInt(base + OFF_ITEM_LEN), ITEM_BYTES));
+            byte[] item   = new byte[len];
+            buffer.get(base + OFF_ITEM, item);
+
+            VarHandle.acquireFence();
+            if ((long) LONGS.getVolatile(buffer, base + OFF_SEQ) == seq) {
+                return new Peer(new String(item, StandardCharsets.UTF_8), price, listings, resellAt);
+            }
+        }
+        return null;
+    }
+
+    private static int slotBase(int i) {
+        return HEADER_SIZE + i * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,123 @@
+package com.sellhelper.logic;
+
+import com.sellhelper.config.SellHelperConfig;
+import com.sellhelper.config.SellHelperConfig.GuiStep;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A GUI flow compiled from its {@link GuiStep} description in the config.
+ *
+ * Compilation resolves action names, checks slot numbers and folds the title /
+ * slot-contents conditions of each step into a single screen predicate, so
+ * that {@link GuiFlowRunner} only has to test one matcher per tick.
+ */
+public record GuiFlow(String name, List<GuiFlow.Step> steps) {
+
+    public enum Action { CLICK, SHIFT_CLICK, COLLECT, CLOSE }
+
+    public record Step(String command,
+                       Predicate<HandledScreen<?>> matcher,
+                       boolean newScreen,
+                       Action action,
+                       int slot,
+                       String item,
+                       int pageSize,
+                       int nextPage,
+                       long timeoutMs) {}
+
+    /** @throws IllegalArgumentException if the description is malformed */
+    public static GuiFlow compile(String name, List<GuiStep> src) {
+        if (src == null || src.isEmpty()) {
+            throw new IllegalArgumentException("flow '" + name + "' has no steps");
+        }
+        List<Step> steps = new ArrayList<>(src.size());
+        for (GuiStep s : src) {
+            if (s == null) throw new IllegalArgumentException("flow '" + name + "' has an empty step");
+            Action action = parseAction(s.action);
+            if ((action == Action.CLICK || action == Action.SHIFT_CLICK) && s.slot < 0) {
+                throw new IllegalArgumentException("flow '" + name + "': " + s.action + " needs a slot");
+            }
+            if (action == Action.COLLECT && s.pageSize <= 0) {
+                throw new IllegalArgumentException("flow '" + name + "': collect needs a pageSize");
+            }
+            steps.add(new Step(
+                    blankToNull(s.command),
+                    matcher(s, action),
+                    s.newScreen,
+                    action,
+                    s.slot,
+                    blankToNull(s.item),
+                    s.pageSize,
+                    s.nextPage,
+                    Math.max(50, s.timeoutMs)));
+        }
+        return new GuiFlow(name, List.copyOf(steps));
+    }
+
+    /**
+     * Compiles every configured flow.  A flow that doesn't compile is replaced
+     * by its default (its error message is added to {@code errors}), and
+     * defaults fill in any flow missing from the config.
+     */
+    public static Map<String, GuiFlow> compileAll(Map<String, List<GuiStep>> configured, List<String> errors) {
+        Map<String, List<GuiStep>> defaults = SellHelperConfig.defaultGuiFlows();
+        Map<String, GuiFlow> out = new HashMap<>();
+        if (configured != null) {
+            configured.forEach((name, src) -> {
+                try {
+                    out.put(name, compile(name, src));
+                } catch (IllegalArgumentException e) {
+                    errors.add(e.getMessage());
+                    if (defaults.containsKey(name)) out.put(name, compile(name, defaults.get(name)));
+                }
+            });
+        }
+        defaults.forEach((name, src) -> out.computeIfAbsent(name, n -> compile(n, src)));
+        return out;
+    }
+
+    // ------------------------------------------------------------ internals
+
+    private static Action parseAction(String action) {
+        if (action == null) return Action.CLICK;
+        return switch (action.toLowerCase(Locale.ROOT)) {
+            case "click"       -> Action.CLICK;
+            case "shift_click" -> Action.SHIFT_CLICK;
+            case "collect"     -> Action.COLLECT;
+            case "close"       -> Action.CLOSE;
+            default -> throw new IllegalArgumentException("unknown action '" + action + "'");
+        };
+    }
+
+    private static Predicate<HandledScreen<?>> matcher(GuiStep s, Action action) {
+        int highest = Math.max(s.waitSlot, Math.max(s.slot, action == Action.COLLECT
+                ? Math.max(s.pageSize - 1, s.nextPage) : -1));
+        int needed = highest + 1;
+        Predicate<HandledScreen<?>> m = screen -> screen.getScreenHandler().slots.size() >= needed;
+
+        String title = blankToNull(s.title);
+        if (title != null) {
+            m = m.and(screen -> screen.getTitle().getString().contains(title));
+        }
+
+        if (s.waitSlot >= 0) {
+            int waitSlot    = s.waitSlot;
+            String waitItem = blankToNull(s.waitItem);
+            m = m.and(screen -> {
+                ItemStack stack = screen.getScreenHandler().slots.get(waitSlot).getStack();
+                if (stack.isEmpty()) return false;
+                return waitItem == null || Registries.ITEM.getId(stack.getItem()).toString().equals(waitItem);
+            });
+        }
+        return m;
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
+    }
+}
@@ -0,0 +1,269 @@
+package com.sellhelper.logic;
+
+import com.sellhelper.config.SellHelperConfig;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+import net.minecraft.screen.PlayerScreenHandler;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.screen.slot.SlotActionType;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Drives one {@link GuiFlow} at a time from the client tick.
+ *
+ * Instead of polling on fixed delays, {@link #tick(MinecraftClient)} runs at
+ * the end of every client tick — after that tick's packets were applied — and
+ * tests the current step's matcher against the open screen.  A step therefore
+ * fires on the very tick its screen contents arrive, and consecutive steps that
+ * don't need a new screen (e.g. "close") run within the same tick.
+ *
+ * "A new screen" means a different syncId or different container contents, so
+ * views that the server swaps into the same container are recognised too.  The
+ * slot that was just clicked is left out of that comparison: the client's
+ * predicted pickup and the server's correction of it would otherwise look like
+ * a new screen.
+ *
+ * A "collect" step additionally waits until the container holds something and
+ * its contents stayed the same for one tick, so that a freshly opened window
+ * or a page arriving over several slot updates is never scanned half-filled.
+ *
+ * Main thread only: {@link #start} and {@link #tick} must both be called there.
+ */
+public class GuiFlowRunner {
+
+    /** Outcome handed to the flow's callback. */
+    public record Result(boolean completed, int collected) {}
+
+    private final Map<String, GuiFlow> flows;
+    /** Compile errors of user flows, reported in chat once the player exists. */
+    private final List<String> compileErrors = new ArrayList<>();
+
+    private GuiFlow flow;
+    private Consumer<Result> onDone;
+    private int index;
+    private boolean stepStarted;
+    private long stepStartedAt;
+    /** Key of the screen the last click (or command) was made on, null = none. */
+    private String lastKey;
+    /** Slot the last click went to, excluded from screen keys; -1 = none. */
+    private int lastClick = -1;
+    /** True while waiting for the next storage page after clicking "next". */
+    private boolean paging;
+    /** Container key seen on the previous tick by a "collect" step, null = none yet. */
+    private String settleKey;
+    private int collected;
+
+    public GuiFlowRunner(Map<String, List<SellHelperConfig.GuiStep>> configured) {
+        this.flows = GuiFlow.compileAll(configured, compileErrors);
+    }
+
+    /** Starts the named flow; false if another flow is running or the name is unknown. */
+    public boolean start(String name, Consumer<Result> onDone) {
+        if (flow != null) return false;
+        GuiFlow f = flows.get(name);
+        if (f == null) return false;
+        this.flow        = f;
+        this.onDone      = onDone;
+        this.index       = 0;
+        this.stepStarted = false;
+        this.lastKey     = null;
+        this.lastClick   = -1;
+        this.paging      = false;
+        this.settleKey   = null;
+        this.collected   = 0;
+        return true;
+    }
+
+    public boolean isRunning() {
+        return flow != null;
+    }
+
+    public void tick(MinecraftClient client) {
+        if (!compileErrors.isEmpty() && client.player != null) {
+            for (String error : compileErrors) {
+                client.player.sendMessage(Text.literal(
+                        "[SellHelper] guiFlows: " + error + " — используется стандартный сценарий"), false);
+            }
+            compileErrors.clear();
+        }
+        while (flow != null && step(client)) {
+            // keep going while steps complete without waiting for the server
+        }
+    }
+
+    // ------------------------------------------------------------ internals
+
+    /** Runs the current step once; true if it finished and the next one may run now. */
+    private boolean step(MinecraftClient client) {
+        if (client.player == null || client.interactionManager == null) {
+            finish(false);
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        GuiFlow.Step step = flow.steps().get(index);
+
+        if (!stepStarted) {
+            stepStarted   = true;
+            stepStartedAt = now;
+            if (step.command() != null) {
+                lastKey   = openKey(client);
+                lastClick = -1;
+                client.player.networkHandler.sendChatCommand(step.command());
+                return false;
+            }
+        }
+        if (now - stepStartedAt > step.timeoutMs()) {
+            finish(false);
+            return false;
+        }
+
+        if (step.action() == GuiFlow.Action.CLOSE) {
+            if (client.currentScreen != null) client.currentScreen.close();
+            return advance();
+        }
+
+        if (!(client.currentScreen instanceof HandledScreen<?> screen)) return false;
+        ScreenHandler handler = screen.getScreenHandler();
+        if (handler instanceof PlayerScreenHandler) return false;
+
+        // The next page always has to differ; other steps only if they ask for a new screen
+        if ((paging || step.newScreen()) && screenKey(handler, lastClick).equals(lastKey)) {
+            return false;
+        }
+        if (!step.matcher().test(screen)) return false;
+
+        switch (step.action()) {
+            case CLICK, SHIFT_CLICK -> {
+                SlotActionType type = step.action() == GuiFlow.Action.CLICK
+                        ? SlotActionType.PICKUP : SlotActionType.QUICK_MOVE;
+                lastKey   = screenKey(handler, step.slot());
+                lastClick = step.slot();
+                client.interactionManager.clickSlot(handler.syncId, step.slot(), 0, type, client.player);
+                return advance();
+            }
+            case COLLECT -> {
+                String key = screenKey(handler, -1);
+                boolean settled = key.equals(settleKey) && hasContents(handler);
+                settleKey = key;
+                return settled && collectPage(client, handler, step);
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Shift-clicks every listing of the wanted item on the current page into
+     * the inventory (one click per listing) until no empty slot is left, then
+     * turns the page if there is room for more.  Each page gets a fresh timeout.
+     */
+    private boolean collectPage(MinecraftClient client, ScreenHandler handler, GuiFlow.Step step) {
+        String itemId = step.item() != null ? step.item() : SellHelperConfig.get().itemId;
+        int free = freePlayerSlots(handler);
+        int n    = Math.min(step.pageSize(), handler.slots.size());
+        for (int i = 0; i < n && free > 0; i++) {
+            ItemStack stack = handler.slots.get(i).getStack();
+            if (!stack.isEmpty() && Registries.ITEM.getId(stack.getItem()).toString().equals(itemId)) {
+                client.interactionManager.clickSlot(
+                        handler.syncId, i, 0, SlotActionType.QUICK_MOVE, client.player);
+                free--;
+                collected++;
+            }
+        }
+
+        int next = step.nextPage();
+        if (free > 0 && next >= 0 && next < handler.slots.size()
+                && !handler.slots.get(next).getStack().isEmpty()) {
+            // Key taken after our own clicks, so only the new page's contents differ from it
+            lastKey   = screenKey(handler, next);
+            lastClick = next;
+            paging    = true;
+            settleKey = null;
+            client.interactionManager.clickSlot(
+                    handler.syncId, next, 0, SlotActionType.PICKUP, client.player);
+            stepStartedAt = System.currentTimeMillis();
+            return false;
+        }
+        lastKey   = screenKey(handler, -1);
+        lastClick = -1;
+        return advance();
+    }
+
+    private boolean advance() {
+        index++;
+        stepStarted = false;
+        paging      = false;
+        settleKey   = null;
+        if (index >= flow.steps().size()) {
+            finish(true);
+            return false;
+        }
+        return true;
+    }
+
+    /** Ends the flow; a flow that gave up closes whatever container it left open. */
+    private void finish(boolean completed) {
+        Consumer<Result> callback = onDone;
+        Result result = new Result(completed, collected);
+        flow   = null;
+        onDone = null;
+
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (!completed && client.currentScreen instanceof HandledScreen<?> screen
+                && !(screen.getScreenHandler() instanceof PlayerScreenHandler)) {
+            screen.close();
+        }
+        if (callback != null) callback.accept(result);
+    }
+
+    private String openKey(MinecraftClient client) {
+        if (client.currentScreen instanceof HandledScreen<?> screen
+                && !(screen.getScreenHandler() instanceof PlayerScreenHandler)) {
+            return screenKey(screen.getScreenHandler(), -1);
+        }
+        return null;
+    }
+
+    /**
+     * Identifies a screen by syncId and container contents (player inventory
+     * and {@code skipSlot} excluded) so that arrival of new contents can be detected.
+     */
+    private String screenKey(ScreenHandler handler, int skipSlot) {
+        StringBuilder sb = new StringBuilder().append(handler.syncId);
+        for (int i = 0; i < handler.slots.size(); i++) {
+            Slot slot = handler.slots.get(i);
+            if (i == skipSlot || slot.inventory instanceof PlayerInventory) continue;
+            ItemStack s = slot.getStack();
+            sb.append('|');
+            if (!s.isEmpty()) sb.append(Registries.ITEM.getId(s.getItem())).append('x').append(s.getCount());
+        }
+        return sb.toString();
+    }
+
+    private boolean hasContents(ScreenHandler handler) {
+        for (Slot slot : handler.slots) {
+            if (!(slot.inventory instanceof PlayerInventory) && slot.hasStack()) return true;
+        }
+        return false;
+    }
+
+    private int freePlayerSlots(ScreenHandler handler) {
+        int free = 0;
+        for (Slot slot : handler.slots) {
+            if (slot.inventory instanceof PlayerInventory && slot.getIndex() < 36 && !slot.hasStack()) {
+                free++;
+            }
+        }
+        return free;
+    }
+}
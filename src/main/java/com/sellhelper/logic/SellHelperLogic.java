@@ -1,8 +1,8 @@
 package com.sellhelper.logic;
 
 import com.sellhelper.config.SellHelperConfig;
+import com.sellhelper.coord.SellHelperCoordinator;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.gui.screen.ingame.HandledScreen;
 import net.minecraft.client.gui.screen.ingame.InventoryScreen;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.item.ItemStack;
@@ -11,10 +11,12 @@ import net.minecraft.registry.Registries;
 import net.minecraft.screen.PlayerScreenHandler;
 import net.minecraft.screen.ScreenHandler;
 import net.minecraft.screen.slot.SlotActionType;
+import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -32,6 +34,22 @@ import java.util.concurrent.atomic.AtomicBoolean;
  *   9–35     = main inventory rows
  *   36–44    = hotbar (PlayerInventory.main[0–8])
  *   45       = off-hand
+ *
+ * When {@code SellHelperConfig.coordination} is on, the instance also joins the
+ * shared {@link SellHelperCoordinator} table: it lists at the floor agreed with
+ * peers selling the same item and staggers its resell timer against theirs.
+ *
+ * Every {@code /ah sell} is tracked in a {@link SellTracker} until the server
+ * confirms or rejects it; the next item is sold as soon as the answer arrives
+ * (or straight away while fewer than {@code sellWindow} sells are in flight).
+ *
+ * When the server reports that AH storage is full, expired listings of the
+ * configured item are collected from the storage view back into the inventory
+ * and the cycle sells them again (see {@link #collectStorage()}).
+ *
+ * GUI sequences (resell via /ah, storage collection) are not hard-coded: they
+ * are {@link GuiFlow}s described in the config and driven by a
+ * {@link GuiFlowRunner} from the client tick.
  */
 public class SellHelperLogic {
 
@@ -39,12 +57,38 @@ public class SellHelperLogic {
 
     private final AtomicBoolean active       = new AtomicBoolean(false);
     private final AtomicBoolean cycleRunning = new AtomicBoolean(false);
+    /** True while the storage-collection GUI flow owns the screen. */
+    private final AtomicBoolean collecting   = new AtomicBoolean(false);
+    /** Compiled once from the config at startup; touched on the main thread only. */
+    private final GuiFlowRunner flowRunner = new GuiFlowRunner(SellHelperConfig.get().guiFlows);
 
     /** True while we're waiting for a purchase after AH slots are full. */
     private volatile boolean inFailback = false;
 
     private volatile ScheduledFuture<?> resellTimer = null;
 
+    /** Resell period while in failback. */
+    private static final long RESELL_PERIOD_MS = 63_000;
+    /** Extra attempts when a resell tick can't run (GUI busy, flow timed out). */
+    private static final int RESELL_RETRIES = 2;
+
+    private final SellHelperCoordinator coordinator = new SellHelperCoordinator();
+    private volatile ScheduledFuture<?> heartbeatTimer = null;
+    /** Last agreed floor announced in chat, so the override is reported once per change. */
+    private volatile long reportedFloor = -1;
+    /** Listings we believe are on the AH: accepted sells minus observed purchases. */
+    private volatile int listings = 0;
+    /** Number of peers on our item last announced in chat (scheduler thread only). */
+    private int reportedSharers = 0;
+    /** Epoch ms of the next scheduled resell, 0 when no resell timer runs. */
+    private volatile long nextResellAt = 0;
+
+    /** Consecutive rejections before a sell is re-routed to the resell path. */
+    private static final int MAX_SELL_RETRIES = 3;
+
+    private final SellTracker sellTracker = new SellTracker();
+    private volatile int sellRetries = 0;
+
     private final ScheduledExecutorService scheduler =
             Executors.newSingleThreadScheduledExecutor(r -> {
                 Thread t = new Thread(r, "SellHelper-Scheduler");
@@ -63,13 +107,25 @@ public class SellHelperLogic {
         return active.get();
     }
 
+    /** Called at the end of every client tick (main thread). */
+    public void tick(MinecraftClient client) {
+        flowRunner.tick(client);
+    }
+
     /** Called by ClientReceiveMessageEvents when a chat line arrives. */
     public void onChatMessage(String message) {
         // Server AH-full response → enter failback, start resell timer
-        if (message.contains("oсвободите хранилище") || message.contains("арендуйте больше слотов на /ah rent!")) {
+        boolean storageFull = message.contains("свободите хранилище");
+        if (storageFull || message.contains("арендуйте больше слотов на /ah rent!")) {
+            // Every sell still in flight will be refused the same way
+            sellTracker.clear();
+            // Storage clogged with expired listings → take them back instead of waiting
+            if (storageFull && active.get() && !inFailback
+                    && SellHelperConfig.get().collectStorage == 1 && startCollection(true)) {
+                return;
+            }
             if (active.get() && !inFailback) {
                 inFailback = true;
-                // cycleRunning will be cleared by the post-sell callback; start timer now
                 startFailbackTimer();
             }
             return;
@@ -77,12 +133,22 @@ public class SellHelperLogic {
 
         // Successful purchase → exit failback, resume selling
         if (message.contains("У Вас купили") && message.contains("на /ah")) {
+            if (listings > 0) listings--;
             stopReselTimer();
             inFailback = false;
+            publishState();
             if (active.get()) {
                 // startCycle() is a no-op if cycle is already running
                 scheduleAfter(this::startCycle, rnd(300, 600));
             }
+            return;
+        }
+
+        SellHelperConfig cfg = SellHelperConfig.get();
+        if (containsAny(message, cfg.sellAcceptedMessages)) {
+            onSellAccepted();
+        } else if (containsAny(message, cfg.sellRejectedMessages)) {
+            onSellRejected();
         }
     }
 
@@ -90,6 +156,7 @@ public class SellHelperLogic {
 
     private void activate() {
         if (active.compareAndSet(false, true)) {
+            joinCoordination();
             startCycle();
         }
     }
@@ -99,13 +166,20 @@ public class SellHelperLogic {
         cycleRunning.set(false);
         inFailback = false;
         stopReselTimer();
+        sellTracker.clear();
+        leaveCoordination();
     }
 
     // ------------------------------------------------------ cycle entry point
 
     private void startCycle() {
         if (!active.get()) return;
+        if (collecting.get()) return;
+        // Window full → the next acknowledgement restarts the cycle
+        if (!sellTracker.hasRoom(SellHelperConfig.get().sellWindow)) return;
         if (!cycleRunning.compareAndSet(false, true)) return;
+        // Collection may have claimed the GUI between the check above and the CAS
+        if (collecting.get()) { cycleRunning.set(false); return; }
         scheduler.execute(this::runCycle);
     }
 
@@ -126,10 +200,14 @@ public class SellHelperLogic {
             SellHelperConfig cfg      = SellHelperConfig.get();
             PlayerInventory   inv     = client.player.getInventory();
             int               selSlot = inv.selectedSlot;
+            // A stack whose sell is still unanswered may already be gone server-side
+            boolean           waiting = false;
 
             // ── Step 1: main hand ──────────────────────────────────────────
             ItemStack mainHand = inv.getStack(selSlot);
-            if (isTarget(mainHand, cfg) && mainHand.getCount() >= cfg.amount) {
+            if (sellTracker.isPending(mainHand)) {
+                waiting = true;
+            } else if (isTarget(mainHand, cfg) && mainHand.getCount() >= cfg.amount) {
                 handleSplit(selSlot, mainHand.getCount(), cfg);
                 return;
             }
@@ -138,6 +216,7 @@ public class SellHelperLogic {
             for (int i = 0; i < 9; i++) {
                 if (i == selSlot) continue;
                 ItemStack s = inv.getStack(i);
+                if (sellTracker.isPending(s)) { waiting = true; continue; }
                 if (isTarget(s, cfg) && s.getCount() >= cfg.amount) {
                     final int slot  = i;
                     final int count = s.getCount();
@@ -164,6 +243,12 @@ public class SellHelperLogic {
                 }
             }
 
+            // ── Only unanswered stacks left → the next answer restarts us ──
+            if (waiting) {
+                cycleRunning.set(false);
+                return;
+            }
+
             // ── No item found anywhere ─────────────────────────────────────
             doAllSold();
         });
@@ -243,19 +328,74 @@ public class SellHelperLogic {
 
     // --------------------------------------------------- sell
 
+    /**
+     * Sends {@code /ah sell} and registers it as outstanding.  The cycle moves
+     * on when the server answers (see {@link #onSellAccepted()} /
+     * {@link #onSellRejected()}), or immediately if the sell window still has
+     * room.  A sell the server never answers counts as accepted after
+     * {@code sellAckTimeoutMs}.
+     */
     private void doSell(SellHelperConfig cfg) {
+        long price = sellPrice(cfg);
         runOnMain(() -> {
             MinecraftClient client = MinecraftClient.getInstance();
-            if (client.player == null) return;
-            client.player.networkHandler.sendChatCommand("ah sell " + cfg.price);
+            if (client.player == null || !active.get()) {
+                cycleRunning.set(false);
+                return;
+            }
+            client.player.networkHandler.sendChatCommand("ah sell " + price);
+            reportPriceOverride(client, cfg, price);
+
+            PlayerInventory inv = client.player.getInventory();
+            SellTracker.PendingSell sell = sellTracker.add(inv.getStack(inv.selectedSlot));
+            sell.timeout = scheduler.schedule(
+                    () -> onSellTimeout(sell), cfg.sellAckTimeoutMs, TimeUnit.MILLISECONDS);
+
+            cycleRunning.set(false);
+            if (sellTracker.hasRoom(cfg.sellWindow)) {
+                continueCycle(rnd(150, 300));
+            }
         });
-        // After the sell delay: if the server hasn't flagged AH-full, immediately sell the next item
+    }
+
+    private void onSellAccepted() {
+        if (sellTracker.matchReply() == null) return;
+        sellRetries = 0;
+        listings++;
+        continueCycle(rnd(100, 200));
+    }
+
+    /**
+     * The oldest sell was refused (wrong item in hand, cooldown, …).  Rerunning
+     * the cycle re-selects the item, so that is the retry; after
+     * {@link #MAX_SELL_RETRIES} refusals in a row we stop hammering the server
+     * and fall back to the resell timer instead.
+     */
+    private void onSellRejected() {
+        if (sellTracker.matchReply() == null) return;
+        if (++sellRetries >= MAX_SELL_RETRIES) {
+            sellRetries = 0;
+            doFailback(SellHelperConfig.get());
+            return;
+        }
+        continueCycle(rnd(1000, 2000));
+    }
+
+    /** No answer within the timeout — assume the listing went through. */
+    private void onSellTimeout(SellTracker.PendingSell sell) {
+        // A reply later than another full timeout is treated as never coming
+        if (!sellTracker.timeOut(sell, SellHelperConfig.get().sellAckTimeoutMs)) return;
+        sellRetries = 0;
+        listings++;
+        continueCycle(rnd(100, 200));
+    }
+
+    private void continueCycle(long delayMs) {
         scheduleAfter(() -> {
-            cycleRunning.set(false);
             if (active.get() && !inFailback) {
                 startCycle();
             }
-        }, rnd(800, 1200));
+        }, delayMs);
     }
 
     // --------------------------------------------------- inventory helpers
@@ -329,24 +469,42 @@ public class SellHelperLogic {
         }
     }
 
-    /** Sends /ah resell immediately and then every 35 s. */
+    /**
+     * Sends /ah resell right away (or at the slot the coordinator assigns us,
+     * so that peers don't all resell at once) and then every 63 s.
+     */
     private void startFailbackTimer() {
         stopReselTimer();
-        doResell();
-        resellTimer = scheduler.scheduleAtFixedRate(this::doResell, 63, 63, TimeUnit.SECONDS);
+        long delay = coordinator.isJoined() ? coordinator.staggeredResellDelay(RESELL_PERIOD_MS) : 0;
+        nextResellAt = System.currentTimeMillis() + delay;
+        publishState();
+        resellTimer = scheduler.scheduleAtFixedRate(
+                this::doResell, delay, RESELL_PERIOD_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Resell action — two modes controlled by {@code SellHelperConfig.ahResell}:
      *   1 = send {@code /ah resell} directly (default)
-     *   0 = open {@code /ah} GUI → click slot 47 → wait → click slot 53 → close
+     *   0 = run the "resell" GUI flow (by default /ah → slot 46 → slot 52 → close)
      *
-     * Mode 0 uses waitForScreenThenClick() to retry every 200ms until the
-     * server-side GUI is actually open, avoiding silent misses due to latency.
+     * Mode 0 clicks on the tick each expected screen arrives rather than
+     * polling, see {@link GuiFlowRunner}.  A tick that can't run (collection
+     * owns the GUI, or the flow timed out) is retried a couple of times before
+     * waiting for the next period.
      */
     private void doResell() {
+        runResell(RESELL_RETRIES);
+    }
+
+    private void runResell(int retriesLeft) {
         if (!active.get()) return;
+        if (collecting.get()) {
+            resellFailed(retriesLeft);
+            return;
+        }
         SellHelperConfig cfg = SellHelperConfig.get();
+        nextResellAt = timerResellAt();
+        publishState();
 
         if (cfg.ahResell == 1) {
             runOnMain(() -> {
@@ -356,52 +514,94 @@ public class SellHelperLogic {
                 }
             });
         } else {
-            // Step 1: open /ah
             runOnMain(() -> {
-                MinecraftClient client = MinecraftClient.getInstance();
-                if (client.player != null && active.get()) {
-                    client.player.networkHandler.sendChatCommand("ah");
+                if (!active.get()) return;
+                if (flowRunner.isRunning()) {
+                    resellFailed(retriesLeft);
+                    return;
                 }
+                boolean started = flowRunner.start("resell", result -> {
+                    if (!result.completed()) resellFailed(retriesLeft);
+                });
+                if (!started) resellFailed(retriesLeft);
             });
-            // Step 2: wait for GUI to open, then click slot 47
-            waitForScreenThenClick(46, 10, () ->
-                // Step 3: wait for next screen (resell confirm), then click slot 53
-                waitForScreenThenClick(52, 10, () ->
-                    // Step 4: close
-                    scheduleAfter(() -> closeInventory(() -> {}), rnd(200, 400))
-                )
-            );
         }
     }
 
+    private void resellFailed(int retriesLeft) {
+        if (!active.get() || !inFailback) return;
+        if (retriesLeft > 0) {
+            long delay = rnd(2000, 4000);
+            nextResellAt = System.currentTimeMillis() + delay;
+            publishState();
+            scheduleAfter(() -> runResell(retriesLeft - 1), delay);
+            return;
+        }
+        nextResellAt = timerResellAt();
+        publishState();
+        runOnMain(() -> {
+            MinecraftClient client = MinecraftClient.getInstance();
+            if (client.player != null) {
+                client.player.sendMessage(Text.literal(
+                        "[SellHelper] Ресейл через GUI не удался, следующая попытка по таймеру"), false);
+            }
+        });
+    }
+
+    /** When the resell timer fires next (a full period ahead if it isn't assigned yet). */
+    private long timerResellAt() {
+        ScheduledFuture<?> t = resellTimer;
+        long delay = t != null ? Math.max(0, t.getDelay(TimeUnit.MILLISECONDS)) : RESELL_PERIOD_MS;
+        return System.currentTimeMillis() + delay;
+    }
+
+    // --------------------------------------------------- storage collection
+
     /**
-     * Polls every 200ms (up to {@code retriesLeft} times) until a
-     * {@link HandledScreen} with enough slots is open, then clicks {@code slot}.
-     * Calls {@code callback} afterwards regardless.
+     * Pulls listings of the configured item out of AH storage into free
+     * inventory slots, page by page, then hands them back to the sell cycle.
+     * Main thread only.  Returns false (and does nothing) while a collection,
+     * a sell cycle or an unanswered sell still owns the inventory.
      */
-    private void waitForScreenThenClick(int slot, int retriesLeft, Runnable callback) {
-        scheduleAfter(() -> {
-            MinecraftClient client = MinecraftClient.getInstance();
-            boolean[] clicked = {false};
-            client.execute(() -> {
-                if (client.currentScreen instanceof HandledScreen<?> screen) {
-                    net.minecraft.screen.ScreenHandler handler = screen.getScreenHandler();
-                    if (handler.slots.size() > slot) {
-                        client.interactionManager.clickSlot(
-                                handler.syncId, slot, 0, SlotActionType.PICKUP, client.player);
-                        clicked[0] = true;
-                    }
-                }
-            });
-            // Give the main thread a moment to process the click result
-            scheduleAfter(() -> {
-                if (clicked[0] || retriesLeft <= 0) {
-                    callback.run();
-                } else {
-                    waitForScreenThenClick(slot, retriesLeft - 1, callback);
-                }
-            }, 100);
-        }, 200);
+    public boolean collectStorage() {
+        return startCollection(false);
+    }
+
+    /**
+     * Runs the "collect" GUI flow: open the storage view, shift-click our
+     * listings into free inventory slots page by page, close.  Main thread only.
+     *
+     * @param fallbackIfEmpty enter the usual resell failback if nothing could be
+     *                        collected (triggered by the storage-full message)
+     * @return whether the collection started
+     */
+    private boolean startCollection(boolean fallbackIfEmpty) {
+        if (!collecting.compareAndSet(false, true)) return false;
+        // A cycle mid-chain would open the inventory over the AH screen
+        if (cycleRunning.get() || !sellTracker.isIdle() || flowRunner.isRunning()) {
+            collecting.set(false);
+            return false;
+        }
+        boolean started = flowRunner.start("collect",
+                result -> finishCollection(result.collected(), fallbackIfEmpty));
+        if (!started) collecting.set(false);
+        return started;
+    }
+
+    private void finishCollection(int collected, boolean fallbackIfEmpty) {
+        collecting.set(false);
+        if (!active.get()) return;
+        if (collected > 0) {
+            // Collected items go straight back on sale at the current price
+            stopReselTimer();
+            inFailback = false;
+            publishState();
+            continueCycle(rnd(300, 600));
+        } else if (fallbackIfEmpty) {
+            doFailback(SellHelperConfig.get());
+        } else {
+            continueCycle(rnd(300, 600));
+        }
     }
 
     // --------------------------------------------------- all sold
@@ -410,6 +610,8 @@ public class SellHelperLogic {
         active.set(false);
         cycleRunning.set(false);
         stopReselTimer();
+        sellTracker.clear();
+        leaveCoordination();
         scheduler.execute(this::sendSystemNotification);
     }
 
@@ -428,6 +630,79 @@ public class SellHelperLogic {
         }
     }
 
+    // --------------------------------------------------- coordination
+
+    private void joinCoordination() {
+        if (SellHelperConfig.get().coordination != 1) return;
+        scheduler.execute(() -> {
+            if (!active.get() || !coordinator.join()) return;
+            heartbeat();
+            heartbeatTimer = scheduler.scheduleAtFixedRate(this::heartbeat, 5, 5, TimeUnit.SECONDS);
+        });
+    }
+
+    private void leaveCoordination() {
+        scheduler.execute(() -> {
+            ScheduledFuture<?> t = heartbeatTimer;
+            if (t != null) {
+                t.cancel(false);
+                heartbeatTimer = null;
+            }
+            coordinator.leave();
+            reportedFloor   = -1;
+            reportedSharers = 0;
+            listings        = 0;
+        });
+    }
+
+    /** Publishes item, price, listing count and resell deadline to peers. */
+    private void publishState() {
+        if (!coordinator.isJoined()) return;
+        SellHelperConfig cfg = SellHelperConfig.get();
+        coordinator.publish(cfg.itemId, cfg.price, listings, nextResellAt);
+    }
+
+    /** Periodic publish; also warns when other clients start selling our item. */
+    private void heartbeat() {
+        publishState();
+        if (!coordinator.isJoined()) return;
+
+        String itemId = SellHelperConfig.get().itemId;
+        List<SellHelperCoordinator.Peer> sharers = coordinator.peersFor(itemId);
+        int count = sharers.size();
+        if (count > reportedSharers) {
+            int peerListings = 0;
+            for (SellHelperCoordinator.Peer p : sharers) peerListings += p.listings();
+            String msg = "[SellHelper] " + itemId + " уже продают другие клиенты: " + count
+                    + " (их лотов на /ah: " + peerListings + "). Лучше разделить предметы между аккаунтами";
+            runOnMain(() -> {
+                MinecraftClient client = MinecraftClient.getInstance();
+                if (client.player != null) client.player.sendMessage(Text.literal(msg), false);
+            });
+        }
+        reportedSharers = count;
+    }
+
+    /**
+     * Price for the next {@code /ah sell}: our own price, raised to the floor
+     * agreed with peers selling the same item so that nobody undercuts.
+     */
+    private long sellPrice(SellHelperConfig cfg) {
+        if (!coordinator.isJoined()) return cfg.price;
+        return coordinator.floorPrice(cfg.itemId, cfg.price);
+    }
+
+    /** Tells the user when a peer's floor replaced their configured price. */
+    private void reportPriceOverride(MinecraftClient client, SellHelperConfig cfg, long price) {
+        long floor = price != cfg.price ? price : -1;
+        if (floor == reportedFloor) return;
+        reportedFloor = floor;
+        if (floor < 0) return;
+        client.player.sendMessage(Text.literal(
+                "[SellHelper] Цена " + cfg.price + " поднята до " + price
+                        + " — общая цена с другими клиентами (coordination)"), false);
+    }
+
     // --------------------------------------------------- utilities
 
     private void stopReselTimer() {
@@ -436,6 +711,7 @@ public class SellHelperLogic {
             t.cancel(false);
             resellTimer = null;
         }
+        nextResellAt = 0;
     }
 
     private boolean isTarget(ItemStack stack, SellHelperConfig cfg) {
@@ -444,6 +720,14 @@ public class SellHelperLogic {
         return id.toString().equals(cfg.itemId);
     }
 
+    private boolean containsAny(String message, List<String> fragments) {
+        if (fragments == null) return false;
+        for (String f : fragments) {
+            if (!f.isEmpty() && message.contains(f)) return true;
+        }
+        return false;
+    }
+
     private int findFreeHotbarSlot(PlayerInventory inv) {
         for (int i = 0; i < 9; i++) {
             if (inv.getStack(i).isEmpty()) return i;
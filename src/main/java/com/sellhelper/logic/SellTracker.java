@@ -0,0 +1,107 @@
+package com.sellhelper.logic;
+
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * FIFO correlator for {@code /ah sell} commands that are still waiting for the
+ * server's answer.
+ *
+ * The server answers sells in the order it received them and its messages
+ * carry no request id, so the oldest outstanding sell is always the one a
+ * "listed" or "rejected" chat line refers to.  A sell that timed out still
+ * owes a reply; if that reply turns up within a grace period it is absorbed
+ * here rather than being credited to the next sell.  After the grace period
+ * the credit expires, so a reply that never comes can't shift the queue for
+ * good.
+ *
+ * Each sell remembers the hand stack it was sent for.  The client doesn't
+ * predict the stack leaving the hand, so until the server's slot update
+ * replaces that ItemStack instance the cycle must not sell it again.
+ *
+ * Sells are added on the main thread and resolved either there (chat) or on
+ * the scheduler (ack timeout), hence the synchronisation.
+ */
+public class SellTracker {
+
+    public static final class PendingSell {
+        /** The hand stack this sell was sent for, compared by identity. */
+        final ItemStack stack;
+        /** Fires if the server stays silent; cancelled once the sell is resolved. */
+        volatile ScheduledFuture<?> timeout;
+
+        PendingSell(ItemStack stack) {
+            this.stack = stack;
+        }
+
+        void cancelTimeout() {
+            ScheduledFuture<?> t = timeout;
+            if (t != null) t.cancel(false);
+        }
+    }
+
+    private final ArrayDeque<PendingSell> pending = new ArrayDeque<>();
+    /** Expiry times (epoch ms) of timed-out sells whose reply may still arrive. */
+    private final ArrayDeque<Long> lateReplies = new ArrayDeque<>();
+
+    /** Records a sell that has just been sent. */
+    public synchronized PendingSell add(ItemStack stack) {
+        PendingSell sell = new PendingSell(stack);
+        pending.addLast(sell);
+        return sell;
+    }
+
+    /**
+     * Matches a server reply to the sell it answers.  Returns the oldest
+     * outstanding sell, or null if the reply belonged to a timed-out sell
+     * (or nothing was pending at all).
+     */
+    public synchronized PendingSell matchReply() {
+        long now = System.currentTimeMillis();
+        while (!lateReplies.isEmpty() && lateReplies.peekFirst() < now) {
+            lateReplies.pollFirst();
+        }
+        if (lateReplies.pollFirst() != null) return null;
+        PendingSell sell = pending.pollFirst();
+        if (sell != null) sell.cancelTimeout();
+        return sell;
+    }
+
+    /**
+     * Gives up waiting for a sell; false if it was already matched to a reply.
+     * A reply arriving within {@code graceMs} is still attributed to it.
+     */
+    public synchronized boolean timeOut(PendingSell sell, long graceMs) {
+        if (!pending.remove(sell)) return false;
+        lateReplies.addLast(System.currentTimeMillis() + graceMs);
+        return true;
+    }
+
+    /** Drops every outstanding sell, e.g. when AH-full rejects the whole window. */
+    public synchronized void clear() {
+        pending.forEach(PendingSell::cancelTimeout);
+        pending.clear();
+        lateReplies.clear();
+    }
+
+    /** True if {@code stack} is the very stack an unanswered sell was sent for. */
+    public synchronized boolean isPending(ItemStack stack) {
+        if (stack.isEmpty()) return false;
+        for (PendingSell sell : pending) {
+            if (sell.stack == stack) return true;
+        }
+        return false;
+    }
+
+    /** True if no sell is waiting for the server's answer. */
+    public synchronized boolean isIdle() {
+        return pending.isEmpty();
+    }
+
+    /** True if another sell may be sent with at most {@code window} in flight. */
+    public synchronized boolean hasRoom(int window) {
+        return pending.size() < Math.max(1, window);
+    }
+}